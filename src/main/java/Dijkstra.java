@@ -54,6 +54,62 @@ public class Dijkstra {
         return -1;
     }
 
+    /**
+     * Same as above, but on a memory mapped graph file, so the graph does not need to fit on the heap. Distances are
+     * long since long paths on big graphs overflow int, and a node is only pushed when its distance improves.
+     * @param graph graph loaded by MappedGraph.open, edge weights must be non negative.
+     * @param start start node.
+     * @param end end node.
+     * @return shortest path if found, else return -1.
+     */
+    public long findShortestPath(MappedGraph graph, int start, int end) {
+        if (graph == null || start < 0 || start >= graph.nodeCount() || end < 0 || end >= graph.nodeCount()) {
+            return -1;
+        }
+
+        PriorityQueue<LongDistance> heap = new PriorityQueue<>(new Comparator<LongDistance>() {
+            @Override
+            public int compare(LongDistance o1, LongDistance o2) {
+                return Long.compare(o1.distance, o2.distance);
+            }
+        });
+        long[] dist = new long[graph.nodeCount()];
+        Arrays.fill(dist, Long.MAX_VALUE);
+        dist[start] = 0;
+        heap.add(new LongDistance(start, 0));
+
+        while (!heap.isEmpty()) {
+            LongDistance curDistance = heap.poll();
+            int curNodeIndex = curDistance.nodeIdx;
+            long curWeight = curDistance.distance;
+
+            if (curNodeIndex == end) {
+                return curWeight;
+            }
+            if (curWeight > dist[curNodeIndex]) {
+                // stale entry, the node was already reached by a shorter path.
+                continue;
+            }
+
+            // update all neighbors.
+            long edgeEnd = graph.edgeEnd(curNodeIndex);
+            for (long e = graph.edgeStart(curNodeIndex); e < edgeEnd; e++) {
+                int weight = graph.weight(e);
+                if (weight < 0) {
+                    throw new IllegalArgumentException("edge " + e + " has negative weight " + weight + ", Dijkstra needs non negative weights.");
+                }
+                int nb = graph.target(e);
+                long nbWeight = curWeight + weight;
+                if (nbWeight < dist[nb]) {
+                    dist[nb] = nbWeight;
+                    heap.add(new LongDistance(nb, nbWeight));
+                }
+            }
+        }
+
+        return -1;
+    }
+
 
     private class Distance {
         public int nodeIdx;
@@ -64,6 +120,15 @@ public class Dijkstra {
         }
     }
 
+    private class LongDistance {
+        public int nodeIdx;
+        public long distance;
+        public LongDistance(int nodeIdx, long distance) {
+            this.nodeIdx = nodeIdx;
+            this.distance = distance;
+        }
+    }
+
     public static void main(String[] args) {
         Dijkstra dijkstra = new Dijkstra();
         Node[] nodes = new Node[3];
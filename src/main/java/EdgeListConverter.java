@@ -0,0 +1,269 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Convert a text edge list into a {@link GraphFile}. Every line is "source target [weight]", separated by spaces, tabs or
+ * commas, weight defaults to 1. Node ids and weights must be non negative. Empty lines and lines starting with '#' or '%' are skipped.
+ *
+ * The text is parsed exactly once and never held in memory:
+ * 1. the input is cut into chunks, workers parse chunks in parallel into temporary binary edge files and track the max node id.
+ * 2. workers count out degrees from the temporary files, offsets are the prefix sum of the degrees.
+ * 3. workers scatter every edge into its slot of the memory mapped output file.
+ * The only heap the conversion needs is one int per node. Edges of one node keep no particular order.
+ */
+public class EdgeListConverter {
+    private static final long CHUNK_BYTES = 64L << 20;
+    // a line starting in a chunk may run past the chunk end by at most this many bytes.
+    private static final long MAX_LINE_BYTES = 1L << 20;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final int EDGE_BYTES = 12;
+
+    private final int nThreads;
+
+    public EdgeListConverter(int nThreads) {
+        if (nThreads <= 0) {
+            throw new IllegalArgumentException("nThreads should be positive, got " + nThreads);
+        }
+        this.nThreads = nThreads;
+    }
+
+    public void convert(Path input, Path output) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        List<Path> chunkFiles = new ArrayList<>();
+        try {
+            // step 1: parse text chunks into temporary binary edge files.
+            long inputSize = Files.size(input);
+            List<Callable<Integer>> parseTasks = new ArrayList<>();
+            for (long start = 0; start < inputSize; start += CHUNK_BYTES) {
+                Path chunkFile = Files.createTempFile(output.toAbsolutePath().getParent(), "edges", ".tmp");
+                chunkFiles.add(chunkFile);
+                long chunkStart = start;
+                long chunkEnd = Math.min(inputSize, start + CHUNK_BYTES);
+                parseTasks.add(() -> parseChunk(input, inputSize, chunkStart, chunkEnd, chunkFile));
+            }
+            int maxNode = -1;
+            for (int chunkMax : runAll(executor, parseTasks)) {
+                maxNode = Math.max(maxNode, chunkMax);
+            }
+            int nodeCount = maxNode + 1;
+
+            // step 2: count out degrees.
+            AtomicIntegerArray degrees = new AtomicIntegerArray(nodeCount);
+            List<Callable<Integer>> countTasks = new ArrayList<>();
+            for (Path chunkFile : chunkFiles) {
+                countTasks.add(() -> {
+                    MappedByteBuffer edges = mapEdges(chunkFile);
+                    while (edges.hasRemaining()) {
+                        degrees.incrementAndGet(edges.getInt());
+                        edges.getInt();
+                        edges.getInt();
+                    }
+                    return 0;
+                });
+            }
+            runAll(executor, countTasks);
+
+            long edgeCount = 0;
+            for (int u = 0; u < nodeCount; u++) {
+                edgeCount += degrees.get(u);
+            }
+
+            try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer[] segments = GraphFile.map(channel, FileChannel.MapMode.READ_WRITE, GraphFile.fileSize(nodeCount, edgeCount));
+                // prefix sum straight into the file, degrees is reused as the per node fill counter.
+                long offset = 0;
+                for (int u = 0; u < nodeCount; u++) {
+                    GraphFile.putLong(segments, GraphFile.offsetsPosition() + 8L * u, offset);
+                    offset += degrees.getAndSet(u, 0);
+                }
+                GraphFile.putLong(segments, GraphFile.offsetsPosition() + 8L * nodeCount, offset);
+
+                // step 3: scatter edges into their slots.
+                long targetsPosition = GraphFile.targetsPosition(nodeCount);
+                long weightsPosition = GraphFile.weightsPosition(nodeCount, edgeCount);
+                List<Callable<Integer>> scatterTasks = new ArrayList<>();
+                for (Path chunkFile : chunkFiles) {
+                    scatterTasks.add(() -> {
+                        MappedByteBuffer edges = mapEdges(chunkFile);
+                        while (edges.hasRemaining()) {
+                            int source = edges.getInt();
+                            long edge = GraphFile.getLong(segments, GraphFile.offsetsPosition() + 8L * source) + degrees.getAndIncrement(source);
+                            GraphFile.putInt(segments, targetsPosition + 4L * edge, edges.getInt());
+                            GraphFile.putInt(segments, weightsPosition + 4L * edge, edges.getInt());
+                        }
+                        return 0;
+                    });
+                }
+                runAll(executor, scatterTasks);
+
+                for (MappedByteBuffer segment : segments) {
+                    segment.force();
+                }
+
+                // header goes last, so a conversion that failed half way leaves a file MappedGraph.open rejects.
+                GraphFile.putInt(segments, 0, GraphFile.MAGIC);
+                GraphFile.putInt(segments, 4, GraphFile.VERSION);
+                GraphFile.putLong(segments, 8, nodeCount);
+                GraphFile.putLong(segments, 16, edgeCount);
+                segments[0].force();
+            }
+        } finally {
+            executor.shutdown();
+            for (Path chunkFile : chunkFiles) {
+                Files.deleteIfExists(chunkFile);
+            }
+        }
+    }
+
+    /**
+     * Parse every line starting in [start, end) into chunkFile as (source, target, weight) ints.
+     * @return max node id seen in the chunk, -1 if the chunk has no edge.
+     */
+    private int parseChunk(Path input, long inputSize, long start, long end, Path chunkFile) throws IOException {
+        int maxNode = -1;
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(chunkFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // map one byte before the chunk to know if the chunk starts in the middle of a line.
+            long mapStart = Math.max(0, start - 1);
+            long mapEnd = Math.min(inputSize, end + MAX_LINE_BYTES);
+            MappedByteBuffer text = in.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            int limit = (int) (end - mapStart);
+            int pos = (int) (start - mapStart);
+
+            // the line crossing the chunk start belongs to the previous chunk.
+            if (start > 0 && text.get(pos - 1) != '\n') {
+                while (pos < text.limit() && text.get(pos) != '\n') {
+                    pos++;
+                }
+                pos++;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            long[] fields = new long[3];
+            while (pos < limit) {
+                int lineEnd = pos;
+                while (lineEnd < text.limit() && text.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if (lineEnd == text.limit() && mapEnd < inputSize) {
+                    throw new IOException("line at byte " + (mapStart + pos) + " is longer than " + MAX_LINE_BYTES + " bytes.");
+                }
+
+                int lineStart = pos;
+                int nFields = parseLine(text, pos, lineEnd, fields, mapStart);
+                pos = lineEnd + 1;
+                if (nFields == 0) {
+                    continue;
+                }
+                if (nFields == 1 || fields[0] > Integer.MAX_VALUE - 2 || fields[1] > Integer.MAX_VALUE - 2) {
+                    throw new IOException("bad edge at byte " + (mapStart + lineStart) + ": expected \"source target [weight]\".");
+                }
+
+                if (buffer.remaining() < EDGE_BYTES) {
+                    flush(out, buffer);
+                }
+                buffer.putInt((int) fields[0]).putInt((int) fields[1]).putInt(nFields == 3 ? (int) fields[2] : 1);
+                maxNode = Math.max(maxNode, (int) Math.max(fields[0], fields[1]));
+            }
+            flush(out, buffer);
+        }
+        return maxNode;
+    }
+
+    /**
+     * Parse up to 3 numbers of the line [pos, lineEnd) into fields.
+     * @return number of fields parsed, 0 for empty or comment lines.
+     */
+    private static int parseLine(MappedByteBuffer text, int pos, int lineEnd, long[] fields, long mapStart) throws IOException {
+        int nFields = 0;
+        while (pos < lineEnd) {
+            byte b = text.get(pos);
+            if (b == ' ' || b == '\t' || b == '\r' || b == ',') {
+                pos++;
+                continue;
+            }
+            if (nFields == 0 && (b == '#' || b == '%')) {
+                return 0;
+            }
+            if (nFields == 3) {
+                throw new IOException("too many fields at byte " + (mapStart + pos));
+            }
+
+            if (b == '-') {
+                throw new IOException("negative number at byte " + (mapStart + pos) + ", node ids and weights must be non negative.");
+            }
+            long value = 0;
+            int digits = 0;
+            while (pos < lineEnd && text.get(pos) >= '0' && text.get(pos) <= '9' && digits < 11) {
+                value = value * 10 + (text.get(pos) - '0');
+                pos++;
+                digits++;
+            }
+            boolean endOfField = pos == lineEnd || text.get(pos) == ' ' || text.get(pos) == '\t' || text.get(pos) == '\r' || text.get(pos) == ',';
+            if (digits == 0 || !endOfField || value > Integer.MAX_VALUE) {
+                throw new IOException("bad number at byte " + (mapStart + pos));
+            }
+            fields[nFields++] = value;
+        }
+        return nFields;
+    }
+
+    private static MappedByteBuffer mapEdges(Path chunkFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(chunkFile, StandardOpenOption.READ)) {
+            MappedByteBuffer edges = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            edges.order(ByteOrder.LITTLE_ENDIAN);
+            return edges;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static List<Integer> runAll(ExecutorService executor, List<Callable<Integer>> tasks) throws IOException, InterruptedException {
+        List<Integer> results = new ArrayList<>();
+        for (Future<Integer> future : executor.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("usage: EdgeListConverter <input edge list> <output graph file> [threads]");
+            return;
+        }
+        int nThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long startTime = System.currentTimeMillis();
+        new EdgeListConverter(nThreads).convert(Paths.get(args[0]), Paths.get(args[1]));
+        try (MappedGraph graph = MappedGraph.open(Paths.get(args[1]))) {
+            System.out.printf("converted %s nodes, %s edges in %s ms\n", graph.nodeCount(), graph.edgeCount(), System.currentTimeMillis() - startTime);
+        }
+    }
+}
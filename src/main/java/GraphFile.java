@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Compact binary graph file (CSR layout), little endian:
+ *
+ * <pre>
+ * header   : magic int, version int, nodeCount long, edgeCount long   (24 bytes)
+ * offsets  : long[nodeCount + 1], edges of node u are [offsets[u], offsets[u + 1])
+ * targets  : int[edgeCount]
+ * weights  : int[edgeCount], non negative
+ * </pre>
+ *
+ * Every section starts on a 4 byte boundary and segments are a multiple of 8 bytes, so no value ever straddles two
+ * mapped segments. Use {@link MappedGraph} to read a file and {@link EdgeListConverter} to build one from text.
+ */
+public class GraphFile {
+    public static final int MAGIC = 0x47525048; // "GRPH"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 24;
+
+    // a single MappedByteBuffer cannot exceed 2GB, so large files are mapped in segments of this size.
+    static final long SEGMENT_BYTES = 1L << 30;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    public static long offsetsPosition() {
+        return HEADER_BYTES;
+    }
+
+    public static long targetsPosition(long nodeCount) {
+        return HEADER_BYTES + 8L * (nodeCount + 1);
+    }
+
+    public static long weightsPosition(long nodeCount, long edgeCount) {
+        return targetsPosition(nodeCount) + 4L * edgeCount;
+    }
+
+    public static long fileSize(long nodeCount, long edgeCount) {
+        return weightsPosition(nodeCount, edgeCount) + 4L * edgeCount;
+    }
+
+    /**
+     * Write a graph given in CSR form.
+     * @param path output file, overwritten if exists.
+     * @param nodeCount number of nodes.
+     * @param offsets nodeCount + 1 entries, offsets[0] = 0 and offsets[nodeCount] = targets.length.
+     * @param targets target node of every edge.
+     * @param weights non negative weight of every edge, null means every edge has weight 1.
+     */
+    public static void write(Path path, int nodeCount, long[] offsets, int[] targets, int[] weights) throws IOException {
+        if (offsets == null || offsets.length != nodeCount + 1 || offsets[0] != 0 || offsets[nodeCount] != targets.length) {
+            throw new IllegalArgumentException("offsets do not describe " + nodeCount + " nodes and " + targets.length + " edges.");
+        }
+        if (weights != null && weights.length != targets.length) {
+            throw new IllegalArgumentException("weights length " + weights.length + " != targets length " + targets.length);
+        }
+        for (int u = 0; u < nodeCount; u++) {
+            if (offsets[u + 1] < offsets[u]) {
+                throw new IllegalArgumentException("offsets[" + (u + 1) + "] = " + offsets[u + 1] + " < offsets[" + u + "] = " + offsets[u]);
+            }
+        }
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] < 0 || targets[i] >= nodeCount) {
+                throw new IllegalArgumentException("targets[" + i + "] = " + targets[i] + " is not a node in [0, " + nodeCount + ")");
+            }
+            if (weights != null && weights[i] < 0) {
+                throw new IllegalArgumentException("weights[" + i + "] = " + weights[i] + " is negative.");
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(nodeCount).putLong(targets.length);
+            for (long offset : offsets) {
+                if (buffer.remaining() < 8) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(offset);
+            }
+            for (int target : targets) {
+                if (buffer.remaining() < 4) {
+                    flush(channel, buffer);
+                }
+                buffer.putInt(target);
+            }
+            for (int i = 0; i < targets.length; i++) {
+                if (buffer.remaining() < 4) {
+                    flush(channel, buffer);
+                }
+                buffer.putInt(weights == null ? 1 : weights[i]);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Write a graph given as adjacency lists, the same shape CyclesInDag uses. Every edge has weight 1.
+     */
+    public static void write(Path path, int[][] graph) throws IOException {
+        long[] offsets = new long[graph.length + 1];
+        for (int i = 0; i < graph.length; i++) {
+            offsets[i + 1] = offsets[i] + graph[i].length;
+        }
+        int[] targets = new int[(int) offsets[graph.length]];
+        for (int i = 0; i < graph.length; i++) {
+            System.arraycopy(graph[i], 0, targets, (int) offsets[i], graph[i].length);
+        }
+        write(path, graph.length, offsets, targets, null);
+    }
+
+    /**
+     * Write a graph given as Node objects. nodes[i].val must be i. Every edge has weight 1.
+     */
+    public static void write(Path path, Node[] nodes) throws IOException {
+        int[][] graph = new int[nodes.length][];
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i].val != i) {
+                throw new IllegalArgumentException("nodes[" + i + "].val = " + nodes[i].val + ", expected " + i);
+            }
+            List<Node> neighbors = nodes[i].neighbors;
+            graph[i] = new int[neighbors.size()];
+            for (int j = 0; j < neighbors.size(); j++) {
+                graph[i][j] = neighbors.get(j).val;
+            }
+        }
+        write(path, graph);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long size) throws IOException {
+        int segmentCount = (int) ((size + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+        MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long position = i * SEGMENT_BYTES;
+            segments[i] = channel.map(mode, position, Math.min(SEGMENT_BYTES, size - position));
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return segments;
+    }
+
+    static int getInt(MappedByteBuffer[] segments, long position) {
+        return segments[(int) (position / SEGMENT_BYTES)].getInt((int) (position % SEGMENT_BYTES));
+    }
+
+    static long getLong(MappedByteBuffer[] segments, long position) {
+        return segments[(int) (position / SEGMENT_BYTES)].getLong((int) (position % SEGMENT_BYTES));
+    }
+
+    static void putInt(MappedByteBuffer[] segments, long position, int value) {
+        segments[(int) (position / SEGMENT_BYTES)].putInt((int) (position % SEGMENT_BYTES), value);
+    }
+
+    static void putLong(MappedByteBuffer[] segments, long position, long value) {
+        segments[(int) (position / SEGMENT_BYTES)].putLong((int) (position % SEGMENT_BYTES), value);
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Load generator for KeyValueStoreServer. Every client opens its own connection and loops:
+ * 1. VERSION, to get a client version.
+ * 2. one pipelined batch: WRITE each key, COMMIT all keys, READ each key back.
+ * Clients are non blocking and spread over a few selector threads, round trip latency of the two steps is recorded
+ * separately and percentiles of both are printed at the end.
+ *
+ * Tens of thousands of clients need a matching open file limit (ulimit -n) on both sides.
+ */
+public class KeyValueStoreLoadGenerator {
+    private static final long SELECT_TIMEOUT_MILLIS = 100;
+
+    private final InetSocketAddress address;
+    private final int nClients;
+    private final int nThreads;
+    private final int keysPerBatch;
+    private final int keySpace;
+    private final LatencyHistogram versionLatency = new LatencyHistogram();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean running = true;
+
+    public KeyValueStoreLoadGenerator(InetSocketAddress address, int nClients, int nThreads, int keysPerBatch, int keySpace) {
+        this.address = address;
+        this.nClients = nClients;
+        this.nThreads = nThreads;
+        this.keysPerBatch = keysPerBatch;
+        this.keySpace = keySpace;
+    }
+
+    public void run(long durationMillis) throws IOException, InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nThreads; t++) {
+            Selector selector = Selector.open();
+            for (int i = t; i < nClients; i += nThreads) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.connect(address);
+                channel.register(selector, SelectionKey.OP_CONNECT, new Client(i, channel));
+            }
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runClients(selector);
+                }
+            }, "kv-load-" + t);
+            threads.add(thread);
+        }
+
+        long startTime = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(durationMillis);
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        long batches = batchLatency.count();
+        System.out.printf("clients = %s, errors = %s, throughput = %.0f batches/s, %.0f requests/s\n",
+                nClients, errors.get(), batches / seconds, batches * (2L * keysPerBatch + 1) / seconds);
+        versionLatency.print("VERSION round trip");
+        batchLatency.print("batch round trip (" + (2 * keysPerBatch + 1) + " requests)");
+    }
+
+    private void runClients(Selector selector) {
+        try (selector) {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Client client = (Client) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            client.channel.finishConnect();
+                            client.channel.socket().setTcpNoDelay(true);
+                            client.sendVersion(key);
+                        } else if (key.isWritable()) {
+                            client.flush(key);
+                        } else if (key.isReadable()) {
+                            client.read(key);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        errors.incrementAndGet();
+                        System.out.printf("[WARN] client %s: %s\n", client.clientId, e);
+                        key.cancel();
+                        client.channel.close();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private class Client {
+        private final int clientId;
+        private final SocketChannel channel;
+        private final String[] keys = new String[keysPerBatch];
+        // replies are short, start small and grow only if a batch of replies does not fit.
+        private ByteBuffer in = ByteBuffer.allocate(1 << 10);
+        private ByteBuffer out;
+        private boolean inBatch;
+        private int pendingReplies;
+        private int clientVersion;
+        private long startTime;
+
+        Client(int clientId, SocketChannel channel) {
+            this.clientId = clientId;
+            this.channel = channel;
+            for (int i = 0; i < keysPerBatch; i++) {
+                keys[i] = "key" + ((clientId * keysPerBatch + i) % keySpace);
+            }
+        }
+
+        void sendVersion(SelectionKey key) throws IOException {
+            inBatch = false;
+            send(key, "VERSION\n", 1);
+        }
+
+        void sendBatch(SelectionKey key) throws IOException {
+            inBatch = true;
+            StringBuilder batch = new StringBuilder();
+            StringBuilder commit = new StringBuilder("COMMIT ").append(clientVersion);
+            for (int i = 0; i < keysPerBatch; i++) {
+                batch.append("WRITE ").append(keys[i]).append(' ').append(clientVersion).append(" value").append(clientVersion).append('\n');
+                commit.append(' ').append(keys[i]);
+            }
+            batch.append(commit).append('\n');
+            for (int i = 0; i < keysPerBatch; i++) {
+                batch.append("READ ").append(keys[i]).append(' ').append(clientVersion).append('\n');
+            }
+            send(key, batch.toString(), 2 * keysPerBatch + 1);
+        }
+
+        private void send(SelectionKey key, String requests, int nReplies) throws IOException {
+            pendingReplies = nReplies;
+            out = ByteBuffer.wrap(requests.getBytes(StandardCharsets.UTF_8));
+            startTime = System.nanoTime();
+            flush(key);
+        }
+
+        void flush(SelectionKey key) throws IOException {
+            channel.write(out);
+            key.interestOps(out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        void read(SelectionKey key) throws IOException {
+            if (channel.read(in) < 0) {
+                throw new IOException("connection closed by server.");
+            }
+            in.flip();
+            int lineStart = in.position();
+            for (int i = in.position(); i < in.limit(); i++) {
+                if (in.get(i) != '\n') {
+                    continue;
+                }
+                String reply = new String(in.array(), lineStart, i - lineStart, StandardCharsets.UTF_8);
+                lineStart = i + 1;
+                if (reply.startsWith("ERR")) {
+                    errors.incrementAndGet();
+                } else if (!inBatch) {
+                    clientVersion = Integer.parseInt(reply.substring("VERSION ".length()));
+                }
+                pendingReplies--;
+            }
+            in.position(lineStart);
+            in.compact();
+            if (!in.hasRemaining()) {
+                in.flip();
+                in = ByteBuffer.allocate(in.capacity() * 2).put(in);
+            }
+
+            if (pendingReplies > 0) {
+                return;
+            }
+            if (pendingReplies < 0) {
+                throw new IOException("got more replies than requests.");
+            }
+            (inBatch ? batchLatency : versionLatency).record(System.nanoTime() - startTime);
+            if (!running) {
+                return;
+            }
+            if (inBatch) {
+                sendVersion(key);
+            } else {
+                sendBatch(key);
+            }
+        }
+    }
+
+    /**
+     * Log linear histogram of nanosecond latencies, 8 buckets per power of two, so percentiles are within 12.5%.
+     */
+    private static class LatencyHistogram {
+        private final AtomicLongArray counts = new AtomicLongArray(64 * 8);
+
+        void record(long nanos) {
+            counts.incrementAndGet(bucket(Math.max(0, nanos)));
+        }
+
+        long count() {
+            long total = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                total += counts.get(i);
+            }
+            return total;
+        }
+
+        long percentile(double percentile) {
+            long rank = (long) Math.ceil(count() * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank && counts.get(i) > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        void print(String name) {
+            System.out.printf("%s: count = %s, p50 = %s us, p99 = %s us, p99.9 = %s us, max = %s us\n",
+                    name, count(), percentile(50) / 1000, percentile(99) / 1000, percentile(99.9) / 1000, percentile(100) / 1000);
+        }
+
+        private static int bucket(long value) {
+            if (value < 8) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return (exponent - 2) * 8 + (int) ((value >>> (exponent - 3)) & 7);
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < 8) {
+                return bucket;
+            }
+            int exponent = bucket / 8 + 2;
+            return ((8L | (bucket % 8)) + 1 << (exponent - 3)) - 1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 6380;
+        int nClients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long durationMillis = args.length > 2 ? Long.parseLong(args[2]) * 1000 : 10000;
+        int keysPerBatch = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int nThreads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        KeyValueStoreLoadGenerator generator = new KeyValueStoreLoadGenerator(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), nClients, nThreads, keysPerBatch, 100000);
+        generator.run(durationMillis);
+    }
+}
@@ -0,0 +1,383 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serve a KeyValueStoreMvcc over a line based TCP protocol. Connections are non blocking and spread over a few selector
+ * event loops sharing one read buffer each, so an idle connection costs a socket and a few small objects, not a thread
+ * or a buffer.
+ *
+ * Requests, one per line, values may contain spaces:
+ * <pre>
+ * VERSION                          -> VERSION &lt;clientVersion&gt;
+ * READ &lt;key&gt; &lt;clientVersion&gt;        -> VALUE &lt;value&gt; | NIL
+ * WRITE &lt;key&gt; &lt;clientVersion&gt; &lt;value&gt; -> OK
+ * COMMIT &lt;clientVersion&gt; &lt;key&gt;...   -> OK | ABORT
+ * </pre>
+ * Any request may also get ERR &lt;message&gt;. Clients can pipeline: send many lines without waiting, replies come back in
+ * the same order.
+ *
+ * KeyValueStoreMvcc is not thread safe, so the store is behind one lock. Every select round an event loop collects the
+ * complete lines of all its readable connections and runs them in a single critical section, so commits from many
+ * connections are applied together while the lock is held for no more than one round of one loop.
+ */
+public class KeyValueStoreServer implements Closeable {
+    private static final int READ_BUFFER_BYTES = 64 << 10;
+    private static final int PARTIAL_LINE_BYTES = 1 << 10;
+    private static final int MAX_LINE_BYTES = 1 << 20;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+
+    private final KeyValueStoreMvcc store;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] eventLoops;
+    private final ReentrantLock storeLock = new ReentrantLock();
+    private volatile boolean running = true;
+    private Thread acceptThread;
+
+    public KeyValueStoreServer(KeyValueStoreMvcc store, InetSocketAddress address, int nEventLoops) throws IOException {
+        if (nEventLoops <= 0) {
+            throw new IllegalArgumentException("nEventLoops should be positive, got " + nEventLoops);
+        }
+        this.store = store;
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address, 4096);
+        this.eventLoops = new EventLoop[nEventLoops];
+        for (int i = 0; i < nEventLoops; i++) {
+            eventLoops[i] = new EventLoop(Selector.open());
+        }
+    }
+
+    public int port() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    public void start() {
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i].thread = new Thread(eventLoops[i], "kv-loop-" + i);
+            eventLoops[i].thread.start();
+        }
+
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int next = 0;
+                long backoffMillis = 0;
+                while (running) {
+                    try {
+                        SocketChannel channel = serverChannel.accept();
+                        backoffMillis = 0;
+                        eventLoops[next].register(channel);
+                        next = (next + 1) % eventLoops.length;
+                    } catch (ClosedChannelException e) {
+                        return;
+                    } catch (IOException e) {
+                        // most likely out of file descriptors, retrying at once would only spin, wait for connections to close.
+                        if (backoffMillis == 0) {
+                            System.out.printf("[WARN] accept failed: %s, backing off.\n", e.getMessage());
+                        }
+                        backoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS, Math.max(1, backoffMillis * 2));
+                        try {
+                            Thread.sleep(backoffMillis);
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }, "kv-accept");
+        acceptThread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverChannel.close();
+        for (EventLoop eventLoop : eventLoops) {
+            // the loop sees running == false, closes its connections and its selector.
+            eventLoop.selector.wakeup();
+        }
+    }
+
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>();
+        private final List<Connection> readyConnections = new ArrayList<>();
+        // one read buffer per loop, a connection only keeps the partial line left over after a read.
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        private volatile boolean dead;
+        private Thread thread;
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(SocketChannel channel) {
+            newChannels.add(channel);
+            if (dead) {
+                // the loop is gone, do not leave the client waiting for a reply that never comes.
+                closeNewChannels();
+            } else {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    try {
+                        runRound();
+                    } catch (IOException | RuntimeException e) {
+                        // one failed round must not take every connection of this loop down, back off a little in
+                        // case the cause (e.g. out of file descriptors) is still there.
+                        System.out.printf("[WARN] %s round failed: %s\n", Thread.currentThread().getName(), e);
+                        for (Connection connection : readyConnections) {
+                            connection.close();
+                        }
+                        readyConnections.clear();
+                        Thread.sleep(10);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                dead = true;
+                if (running) {
+                    // left the loop on an Error (e.g. OutOfMemoryError) or an interrupt, stop the whole server rather
+                    // than keep accepting connections nobody serves.
+                    System.out.printf("[ERROR] %s stopped unexpectedly, shutting the server down.\n", Thread.currentThread().getName());
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                closeNewChannels();
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void runRound() throws IOException {
+            selector.select();
+            SocketChannel channel;
+            while ((channel = newChannels.poll()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    Connection connection = new Connection(channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    channel.close();
+                }
+            }
+
+            for (SelectionKey key : selector.selectedKeys()) {
+                Connection connection = (Connection) key.attachment();
+                try {
+                    if (key.isWritable()) {
+                        connection.flush();
+                    }
+                    if (key.isValid() && key.isReadable() && connection.read(readBuffer)) {
+                        readyConnections.add(connection);
+                    }
+                } catch (IOException e) {
+                    // client went away, nothing to reply to.
+                    connection.close();
+                }
+            }
+            selector.selectedKeys().clear();
+
+            if (readyConnections.isEmpty()) {
+                return;
+            }
+            execute(readyConnections);
+            for (Connection connection : readyConnections) {
+                try {
+                    connection.startWrite();
+                } catch (IOException e) {
+                    connection.close();
+                }
+            }
+            readyConnections.clear();
+        }
+
+        private void closeNewChannels() {
+            SocketChannel channel;
+            while ((channel = newChannels.poll()) != null) {
+                new Connection(channel).close();
+            }
+        }
+    }
+
+    // run every pending request of the given connections in one critical section.
+    private void execute(List<Connection> connections) {
+        storeLock.lock();
+        try {
+            for (Connection connection : connections) {
+                for (String request : connection.requests) {
+                    connection.replies.append(handle(request)).append('\n');
+                }
+                connection.requests.clear();
+            }
+        } finally {
+            storeLock.unlock();
+        }
+    }
+
+    // caller must hold storeLock.
+    private String handle(String request) {
+        String[] parts = request.split(" ", 4);
+        try {
+            switch (parts[0]) {
+                case "VERSION":
+                    return "VERSION " + store.distributeClientVersion();
+                case "READ":
+                    if (parts.length != 3) {
+                        return "ERR usage: READ <key> <clientVersion>";
+                    }
+                    String value = store.read(parts[1], Integer.parseInt(parts[2]));
+                    return value == null ? "NIL" : "VALUE " + value;
+                case "WRITE":
+                    if (parts.length != 4) {
+                        return "ERR usage: WRITE <key> <clientVersion> <value>";
+                    }
+                    store.write(parts[1], parts[3], Integer.parseInt(parts[2]));
+                    return "OK";
+                case "COMMIT":
+                    String[] commitParts = request.split(" ");
+                    if (commitParts.length < 3) {
+                        return "ERR usage: COMMIT <clientVersion> <key>...";
+                    }
+                    List<String> keys = Arrays.asList(commitParts).subList(2, commitParts.length);
+                    return store.commit(keys, Integer.parseInt(commitParts[1])) ? "OK" : "ABORT";
+                default:
+                    return "ERR unknown command " + parts[0];
+            }
+        } catch (NumberFormatException e) {
+            return "ERR bad clientVersion";
+        } catch (Exception e) {
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    /**
+     * State of one client connection, only touched by its event loop (and under storeLock by execute).
+     */
+    private static class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        // bytes of a line not complete yet, null when the last read ended on a line break.
+        private ByteBuffer partialLine;
+        private ByteBuffer out;
+        private final List<String> requests = new ArrayList<>();
+        private final StringBuilder replies = new StringBuilder();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Read what is available and cut every complete line into a request. Reads go into the loop's shared buffer, only
+         * a partial line at the end is copied into a buffer of this connection.
+         * @return true if there are requests to run.
+         */
+        boolean read(ByteBuffer readBuffer) throws IOException {
+            ByteBuffer in = partialLine == null ? readBuffer.clear() : partialLine;
+            partialLine = null;
+            if (channel.read(in) < 0) {
+                close();
+                return false;
+            }
+
+            in.flip();
+            int lineStart = in.position();
+            for (int i = in.position(); i < in.limit(); i++) {
+                if (in.get(i) == '\n') {
+                    int lineEnd = i > lineStart && in.get(i - 1) == '\r' ? i - 1 : i;
+                    requests.add(new String(in.array(), lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+                    lineStart = i + 1;
+                }
+            }
+            in.position(lineStart);
+
+            int leftover = in.remaining();
+            if (leftover >= MAX_LINE_BYTES) {
+                channel.write(ByteBuffer.wrap(("ERR line longer than " + MAX_LINE_BYTES + " bytes\n").getBytes(StandardCharsets.UTF_8)));
+                close();
+                return false;
+            }
+            if (leftover > 0) {
+                if (in != readBuffer && leftover <= in.capacity() / 2) {
+                    partialLine = in.compact();
+                } else {
+                    // leave room to read the rest of the line, doubling while it keeps growing.
+                    int capacity = Math.min(MAX_LINE_BYTES, Math.max(PARTIAL_LINE_BYTES, leftover * 2));
+                    partialLine = ByteBuffer.allocate(capacity).put(in);
+                }
+            }
+            return !requests.isEmpty();
+        }
+
+        void startWrite() throws IOException {
+            if (!channel.isOpen()) {
+                return;
+            }
+            out = ByteBuffer.wrap(replies.toString().getBytes(StandardCharsets.UTF_8));
+            replies.setLength(0);
+            flush();
+        }
+
+        /**
+         * Write pending replies. While some are left, stop reading from the client so replies stay in order and a client
+         * that does not read cannot make us buffer without bound.
+         */
+        void flush() throws IOException {
+            channel.write(out);
+            if (out.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                out = null;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing left to do with this connection.
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 6380;
+        KeyValueStoreMvcc.IsolationLevel isolationLevel = args.length > 1 ? KeyValueStoreMvcc.IsolationLevel.valueOf(args[1]) : KeyValueStoreMvcc.IsolationLevel.READ_COMMITTED;
+        int nEventLoops = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        KeyValueStoreServer server = new KeyValueStoreServer(new KeyValueStoreMvcc(isolationLevel), new InetSocketAddress(InetAddress.getLoopbackAddress(), port), nEventLoops);
+        server.start();
+        System.out.printf("KeyValueStoreServer listening on port %s, isolation level %s, %s event loops\n", server.port(), isolationLevel, nEventLoops);
+        server.acceptThread.join();
+    }
+}
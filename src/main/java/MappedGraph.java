@@ -0,0 +1,158 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read only view of a {@link GraphFile}. The file is memory mapped, nothing is copied onto the heap, so graphs with
+ * hundreds of millions of edges open instantly and pages are loaded by the OS on demand.
+ */
+public class MappedGraph implements Closeable {
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final int nodeCount;
+    private final long edgeCount;
+    private final long targetsPosition;
+    private final long weightsPosition;
+
+    private MappedGraph(FileChannel channel, MappedByteBuffer[] segments, int nodeCount, long edgeCount) {
+        this.channel = channel;
+        this.segments = segments;
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.targetsPosition = GraphFile.targetsPosition(nodeCount);
+        this.weightsPosition = GraphFile.weightsPosition(nodeCount, edgeCount);
+    }
+
+    /**
+     * Open a graph file. Only the header is checked, offsets and targets are trusted so opening stays O(1), call
+     * {@link #validate()} for files that did not come from GraphFile or EdgeListConverter.
+     */
+    public static MappedGraph open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < GraphFile.HEADER_BYTES) {
+                throw new IOException(path + " is too small to be a graph file.");
+            }
+            MappedByteBuffer[] segments = GraphFile.map(channel, FileChannel.MapMode.READ_ONLY, size);
+            if (GraphFile.getInt(segments, 0) != GraphFile.MAGIC) {
+                throw new IOException(path + " is not a graph file.");
+            }
+            int version = GraphFile.getInt(segments, 4);
+            if (version != GraphFile.VERSION) {
+                throw new IOException(path + " has unsupported version " + version);
+            }
+            long nodeCount = GraphFile.getLong(segments, 8);
+            long edgeCount = GraphFile.getLong(segments, 16);
+            if (nodeCount < 0 || nodeCount >= Integer.MAX_VALUE || edgeCount < 0 || GraphFile.fileSize(nodeCount, edgeCount) != size) {
+                throw new IOException(path + " header does not match file size, nodeCount = " + nodeCount + ", edgeCount = " + edgeCount);
+            }
+            return new MappedGraph(channel, segments, (int) nodeCount, edgeCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public long edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return index of the first edge of node u.
+     */
+    public long edgeStart(int u) {
+        return GraphFile.getLong(segments, GraphFile.offsetsPosition() + 8L * u);
+    }
+
+    /**
+     * @return index after the last edge of node u.
+     */
+    public long edgeEnd(int u) {
+        return GraphFile.getLong(segments, GraphFile.offsetsPosition() + 8L * (u + 1));
+    }
+
+    public int degree(int u) {
+        return (int) (edgeEnd(u) - edgeStart(u));
+    }
+
+    public int target(long edge) {
+        return GraphFile.getInt(segments, targetsPosition + 4L * edge);
+    }
+
+    public int weight(long edge) {
+        return GraphFile.getInt(segments, weightsPosition + 4L * edge);
+    }
+
+    /**
+     * Check that offsets never go backwards, every target is a node of this graph and no weight is negative. Reads the
+     * whole file.
+     */
+    public void validate() throws IOException {
+        if (edgeStart(0) != 0 || edgeEnd(nodeCount - 1) != edgeCount) {
+            throw new IOException("offsets do not cover edges [0, " + edgeCount + ")");
+        }
+        for (int u = 0; u < nodeCount; u++) {
+            if (edgeEnd(u) < edgeStart(u)) {
+                throw new IOException("offsets of node " + u + " go backwards.");
+            }
+        }
+        for (long e = 0; e < edgeCount; e++) {
+            int target = target(e);
+            if (target < 0 || target >= nodeCount) {
+                throw new IOException("edge " + e + " points to " + target + ", not a node in [0, " + nodeCount + ")");
+            }
+            if (weight(e) < 0) {
+                throw new IOException("edge " + e + " has negative weight " + weight(e));
+            }
+        }
+    }
+
+    /**
+     * Copy the neighbors of node u, handy for the int[][] based algorithms on small graphs.
+     */
+    public int[] neighbors(int u) {
+        long start = edgeStart(u);
+        int[] result = new int[(int) (edgeEnd(u) - start)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = target(start + i);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping itself is released when the buffers are garbage collected.
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        // same graph as ParallelShortestPath.main
+        int[][] graph = new int[5][];
+        graph[0] = new int[] {1, 2};
+        graph[1] = new int[] {0, 4};
+        graph[2] = new int[] {0, 3};
+        graph[3] = new int[] {2, 4};
+        graph[4] = new int[] {1, 3};
+
+        Path path = Files.createTempFile("graph", ".bin");
+        GraphFile.write(path, graph);
+        try (MappedGraph mappedGraph = MappedGraph.open(path)) {
+            System.out.printf("nodes = %s, edges = %s\n", mappedGraph.nodeCount(), mappedGraph.edgeCount());
+            for (int u = 0; u < mappedGraph.nodeCount(); u++) {
+                System.out.printf("node %s -> %s\n", u, Arrays.toString(mappedGraph.neighbors(u)));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
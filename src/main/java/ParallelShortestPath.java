@@ -40,6 +40,45 @@ public class ParallelShortestPath {
     }
     // end of version 1
 
+    // version 1 on a memory mapped graph file, nodes are ids so visited and queue are plain int / boolean arrays.
+    public int findShortestPathV1(MappedGraph graph, int start, int end) {
+        if (graph == null || start < 0 || start >= graph.nodeCount() || end < 0 || end >= graph.nodeCount()) {
+            return -1;
+        }
+
+        int[] queue = new int[graph.nodeCount()];
+        boolean[] visited = new boolean[graph.nodeCount()];
+        int head = 0;
+        int tail = 0;
+        int shortestPath = 0;
+        queue[tail++] = start;
+        visited[start] = true;
+
+        while (head < tail) {
+            int levelEnd = tail;
+            while (head < levelEnd) {
+                int cur = queue[head++];
+                if (cur == end) {
+                    return shortestPath;
+                }
+                long edgeEnd = graph.edgeEnd(cur);
+                for (long e = graph.edgeStart(cur); e < edgeEnd; e++) {
+                    int nb = graph.target(e);
+                    if (visited[nb]) {
+                        continue;
+                    }
+
+                    queue[tail++] = nb;
+                    visited[nb] = true;
+                }
+            }
+            shortestPath++;
+        }
+
+        // cannot reach to end node.
+        return -1;
+    }
+
     private Queue<Node> queue = new LinkedList<>();
     private HashSet<Node> visited = new HashSet<>();
     private int shortestPath = 0;